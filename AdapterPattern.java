@@ -5,6 +5,27 @@
 package Pattern;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 /**
  *
  * @author poornimaepy
@@ -59,13 +80,13 @@ class MediaAdapter implements MediaPlayer {
 }
 
 class AudioPlayer implements MediaPlayer {
-    MediaAdapter mediaAdapter;
 
+    // Stateless so a single instance can be shared by batch worker threads
     public void play(String audioType, String fileName) {
         if (audioType.equalsIgnoreCase("mp3")) {
             System.out.println("Playing mp3 file. Name: " + fileName);
         } else if (audioType.equalsIgnoreCase("vlc") || audioType.equalsIgnoreCase("mp4")) {
-            mediaAdapter = new MediaAdapter(audioType);
+            MediaAdapter mediaAdapter = new MediaAdapter(audioType);
             mediaAdapter.play(audioType, fileName);
         } else {
             System.out.println("Invalid media. " + audioType + " format not supported");
@@ -73,8 +94,191 @@ class AudioPlayer implements MediaPlayer {
     }
 }
 
+
+// Per-format counters shared by the batch workers
+class FormatStats {
+    final LongAdder files = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+
+    // Throughput over the batch's wall-clock time, not summed worker time
+    double filesPerSecond(long elapsedNanos) {
+        return elapsedNanos == 0 ? 0 : files.sum() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    double megabytesPerSecond(long elapsedNanos) {
+        return elapsedNanos == 0 ? 0 : bytes.sum() * 1_000_000_000.0 / elapsedNanos / (1024 * 1024);
+    }
+}
+
+// Batch mode: walks a directory tree and plays every file through a MediaPlayer
+class MediaBatchProcessor {
+    static final Set<String> SUPPORTED_FORMATS = Set.of("mp3", "mp4", "vlc");
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // One reusable read buffer per worker thread, so memory is bounded by the pool size
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    private final MediaPlayer player;
+    private final int parallelism;
+    private final Semaphore openFiles;
+    private final Map<String, FormatStats> stats = new ConcurrentHashMap<>();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder unreadable = new LongAdder();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public MediaBatchProcessor(MediaPlayer player) {
+        this(player, Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    public MediaBatchProcessor(MediaPlayer player, int parallelism, int maxOpenFiles) {
+        if (parallelism < 1 || maxOpenFiles < 1) {
+            throw new IllegalArgumentException("parallelism and maxOpenFiles must be positive");
+        }
+        this.player = player;
+        this.parallelism = parallelism;
+        this.openFiles = new Semaphore(maxOpenFiles);
+    }
+
+    public void process(Path root, long progressIntervalMillis) throws IOException, InterruptedException {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "media-batch-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        progress.scheduleAtFixedRate(() -> System.out.println(progressLine()),
+                progressIntervalMillis, progressIntervalMillis, TimeUnit.MILLISECONDS);
+        try {
+            // The walk is lazy and blocks on the semaphore, so queued plus running
+            // tasks never exceed maxOpenFiles however large the tree is
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        submit(pool, file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                // An unreadable file or directory is counted and skipped, not fatal to the batch
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    unreadable.increment();
+                    System.err.println("Cannot read " + file + ": " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null) {
+                        unreadable.increment();
+                        System.err.println("Failed while listing " + dir + ": " + e);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            progress.shutdownNow();
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private void submit(ExecutorService pool, Path file) {
+        String format = formatOf(file);
+        if (!SUPPORTED_FORMATS.contains(format)) {
+            skipped.increment();
+            return;
+        }
+        openFiles.acquireUninterruptibly();
+        submitted.increment();
+        try {
+            pool.execute(() -> processFile(file, format));
+        } catch (RuntimeException e) {
+            openFiles.release();
+            throw e;
+        }
+    }
+
+    private void processFile(Path file, String format) {
+        FormatStats formatStats = stats.computeIfAbsent(format, f -> new FormatStats());
+        try {
+            long size = decode(file);
+            player.play(format, file.getFileName().toString());
+            formatStats.bytes.add(size);
+            formatStats.files.increment();
+        } catch (IOException | RuntimeException e) {
+            // Keep going: a broken file is reported, not fatal to the batch
+            formatStats.failed.increment();
+            failed.increment();
+            System.err.println("Failed to process " + file + ": " + e);
+        } finally {
+            completed.increment();
+            openFiles.release();
+        }
+    }
+
+    // Streams the file through the worker's buffer; stands in for real decoding
+    private long decode(Path file) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        long total = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                total += read;
+                buffer.clear();
+            }
+        }
+        return total;
+    }
+
+    static String formatOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    public String progressLine() {
+        return "Progress: " + completed.sum() + "/" + submitted.sum() + " files, "
+                + failed.sum() + " failed, " + skipped.sum() + " skipped, " + unreadable.sum() + " unreadable";
+    }
+
+    public String summary() {
+        StringBuilder report = new StringBuilder(progressLine());
+        long elapsed = (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+        for (Map.Entry<String, FormatStats> entry : new TreeMap<>(stats).entrySet()) {
+            FormatStats s = entry.getValue();
+            report.append(String.format("%n  %s: %d ok, %d failed, %.1f files/s, %.2f MB/s",
+                    entry.getKey(), s.files.sum(), s.failed.sum(), s.filesPerSecond(elapsed), s.megabytesPerSecond(elapsed)));
+        }
+        return report.toString();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+}
 public class AdapterPattern {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0) {
+            // Batch mode: AdapterPattern <directory> [threads] [maxOpenFiles]
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int maxOpenFiles = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+            MediaBatchProcessor batch = new MediaBatchProcessor(new AudioPlayer(), threads, maxOpenFiles);
+            batch.process(Paths.get(args[0]), 1000);
+            System.out.println(batch.summary());
+            return;
+        }
+
         AudioPlayer audioPlayer = new AudioPlayer();
 
         audioPlayer.play("mp3", "beyond the horizon.mp3");
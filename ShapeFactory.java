@@ -5,6 +5,18 @@
 package Pattern;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 /**
  *
  * @author poornimaepy
@@ -31,24 +43,248 @@ class Rectangle implements Shape {
     }
 }
 
+// Flyweight registry: shapes are stateless, so each type shares one prototype
+enum ShapeType {
+    CIRCLE(new Circle(), (byte) 0x40),
+    SQUARE(new Square(), (byte) 0x80),
+    RECTANGLE(new Rectangle(), (byte) 0xC0);
+
+    private static final ShapeType[] BY_CODE = values();
+    private static final Map<String, ShapeType> BY_NAME = new HashMap<>();
+
+    static {
+        for (ShapeType type : BY_CODE) {
+            BY_NAME.put(type.name(), type);
+            BY_NAME.put(type.name().toLowerCase(Locale.ROOT), type);
+        }
+    }
+
+    private final Shape prototype;
+    private final byte shade;
+
+    ShapeType(Shape prototype, byte shade) {
+        this.prototype = prototype;
+        this.shade = shade;
+    }
+
+    public Shape prototype() {
+        return prototype;
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public byte shade() {
+        return shade;
+    }
+
+    public static ShapeType fromCode(byte code) {
+        return BY_CODE[code];
+    }
+
+    // Hash lookup; only mixed-case names pay for an upper-case copy
+    public static ShapeType lookup(String name) {
+        ShapeType type = BY_NAME.get(name);
+        return type != null ? type : BY_NAME.get(name.toUpperCase(Locale.ROOT));
+    }
+}
+
 class Shape1 {
     public Shape getShape(String shapeType) {
         if (shapeType == null) {
             return null;
         }
-        if (shapeType.equalsIgnoreCase("CIRCLE")) {
-            return new Circle();
-        } else if (shapeType.equalsIgnoreCase("SQUARE")) {
-            return new Square();
-        } else if (shapeType.equalsIgnoreCase("RECTANGLE")) {
-            return new Rectangle();
+        ShapeType type = ShapeType.lookup(shapeType);
+        return type == null ? null : type.prototype();
+    }
+}
+
+// Structure-of-arrays batch: one primitive array per attribute
+class ShapeBatch {
+    private byte[] types;
+    private int[] x;
+    private int[] y;
+    private int[] size;
+    private int count;
+
+    public ShapeBatch(int initialCapacity) {
+        types = new byte[initialCapacity];
+        x = new int[initialCapacity];
+        y = new int[initialCapacity];
+        size = new int[initialCapacity];
+    }
+
+    public void add(ShapeType type, int px, int py, int psize) {
+        if (count == types.length) {
+            int capacity = Math.max(16, count * 2);
+            types = Arrays.copyOf(types, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            size = Arrays.copyOf(size, capacity);
         }
-        return null;
+        types[count] = type.code();
+        x[count] = px;
+        y[count] = py;
+        size[count] = psize;
+        count++;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    byte[] types() {
+        return types;
+    }
+
+    int[] xs() {
+        return x;
+    }
+
+    int[] ys() {
+        return y;
+    }
+
+    int[] sizes() {
+        return size;
+    }
+}
+
+// Renders a ShapeBatch into an off-screen 8-bit grayscale buffer in one pass
+class ShapeRenderer {
+    private static final int BAND_HEIGHT = 64;
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    public ShapeRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new byte[width * height];
+    }
+
+    public void clear() {
+        Arrays.fill(pixels, (byte) 0);
+    }
+
+    // Shapes are drawn in batch order, later shapes on top
+    public void render(ShapeBatch batch) {
+        renderRows(batch, 0, height);
+    }
+
+    // Each core takes a horizontal band and draws the shapes that touch it, clipped to it, so
+    // bands never write the same pixel and the result matches render()
+    public void renderParallel(ShapeBatch batch) {
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (bands == 1 || Runtime.getRuntime().availableProcessors() == 1) {
+            render(batch);
+            return;
+        }
+        byte[] types = batch.types();
+        int[] ys = batch.ys();
+        int[] sizes = batch.sizes();
+        int n = batch.size();
+        // One counting-sort pass buckets shape indices by band, in batch order within each band,
+        // so the total work stays proportional to the shapes drawn rather than bands x shapes
+        int[] bandStart = new int[bands + 1];
+        for (int i = 0; i < n; i++) {
+            int top = Math.max(ys[i], 0);
+            int bottom = Math.min(ys[i] + shapeHeight(types[i], sizes[i]), height);
+            for (int band = top / BAND_HEIGHT; top < bottom && band <= (bottom - 1) / BAND_HEIGHT; band++) {
+                bandStart[band + 1]++;
+            }
+        }
+        for (int band = 0; band < bands; band++) {
+            bandStart[band + 1] += bandStart[band];
+        }
+        int[] shapes = new int[bandStart[bands]];
+        int[] next = Arrays.copyOf(bandStart, bands);
+        for (int i = 0; i < n; i++) {
+            int top = Math.max(ys[i], 0);
+            int bottom = Math.min(ys[i] + shapeHeight(types[i], sizes[i]), height);
+            for (int band = top / BAND_HEIGHT; top < bottom && band <= (bottom - 1) / BAND_HEIGHT; band++) {
+                shapes[next[band]++] = i;
+            }
+        }
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int rowFrom = band * BAND_HEIGHT;
+            int rowTo = Math.min(height, rowFrom + BAND_HEIGHT);
+            for (int k = bandStart[band]; k < bandStart[band + 1]; k++) {
+                drawShape(batch, shapes[k], rowFrom, rowTo);
+            }
+        });
+    }
+
+    private void renderRows(ShapeBatch batch, int rowFrom, int rowTo) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            drawShape(batch, i, rowFrom, rowTo);
+        }
+    }
+
+    private static int shapeHeight(byte type, int size) {
+        return type == ShapeType.RECTANGLE.code() ? size / 2 : size;
+    }
+
+    // Draws shape i clipped to rows [rowFrom, rowTo)
+    private void drawShape(ShapeBatch batch, int i, int rowFrom, int rowTo) {
+        ShapeType type = ShapeType.fromCode(batch.types()[i]);
+        int x = batch.xs()[i];
+        int y = batch.ys()[i];
+        int s = batch.sizes()[i];
+        int top = Math.max(y, rowFrom);
+        int bottom = Math.min(y + shapeHeight(type.code(), s), rowTo);
+        if (top >= bottom) {
+            return;
+        }
+        if (type == ShapeType.CIRCLE) {
+            fillCircle(x, y, s, top, bottom, type.shade());
+        } else {
+            for (int row = top; row < bottom; row++) {
+                fillSpan(row, x, x + s, type.shade());
+            }
+        }
+    }
+
+    private void fillCircle(int x, int y, int diameter, int top, int bottom, byte shade) {
+        double r = diameter / 2.0;
+        double cx = x + r;
+        double cy = y + r;
+        for (int row = top; row < bottom; row++) {
+            double dy = row + 0.5 - cy;
+            double half = Math.sqrt(Math.max(0, r * r - dy * dy));
+            fillSpan(row, (int) Math.round(cx - half), (int) Math.round(cx + half), shade);
+        }
+    }
+
+    private void fillSpan(int row, int from, int to, byte shade) {
+        int start = Math.max(from, 0);
+        int end = Math.min(to, width);
+        if (start < end) {
+            int offset = row * width;
+            Arrays.fill(pixels, offset + start, offset + end, shade);
+        }
+    }
+
+    public byte[] pixels() {
+        return pixels;
+    }
+
+    // Binary PGM (P5) image: a short text header followed by the raw pixels
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(("P5\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(pixels);
+        out.flush();
     }
 }
 
 public class ShapeFactory {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Shape1 shapeFactory = new Shape1();
 
         Shape shape1 = shapeFactory.getShape("CIRCLE");
@@ -59,5 +295,24 @@ public class ShapeFactory {
 
         Shape shape3 = shapeFactory.getShape("RECTANGLE");
         shape3.draw();
+
+        if (args.length > 0) {
+            // Batch mode: ShapeFactory <output.pgm> [shape count]
+            int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+            ShapeBatch batch = new ShapeBatch(count);
+            Random random = new Random(42);
+            ShapeType[] types = ShapeType.values();
+            for (int i = 0; i < count; i++) {
+                batch.add(types[random.nextInt(types.length)], random.nextInt(1920), random.nextInt(1080),
+                        4 + random.nextInt(28));
+            }
+            ShapeRenderer renderer = new ShapeRenderer(1920, 1080);
+            long start = System.nanoTime();
+            renderer.renderParallel(batch);
+            System.out.println("Rendered " + count + " shapes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[0])))) {
+                renderer.writeTo(out);
+            }
+        }
     }
 }
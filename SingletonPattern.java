@@ -5,36 +5,803 @@
 package Pattern;
 import java.util.List;
 import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 /**
  *
  * @author poornimaepy
  */
+enum LogLevel {
+    TRACE, DEBUG, INFO, WARN, ERROR
+}
+
+// Fixed-window rate limiter for high-frequency log events
+class LogSampler {
+    private final long limit;
+    private final long windowNanos;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong used = new AtomicLong();
+
+    LogSampler(long limit, Duration window) {
+        this.limit = limit;
+        this.windowNanos = window.toNanos();
+    }
+
+    static LogSampler perSecond(long limit) {
+        return new LogSampler(limit, Duration.ofSeconds(1));
+    }
+
+    boolean tryAcquire() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            used.set(0);
+        }
+        return used.incrementAndGet() <= limit;
+    }
+}
+
+// Lazily creates one instance per name; lookups of existing names take no lock
+class InstanceRegistry<T> {
+    private final ConcurrentMap<String, T> instances = new ConcurrentHashMap<>();
+    private final Function<String, T> factory;
+
+    InstanceRegistry(Function<String, T> factory) {
+        this.factory = factory;
+    }
+
+    T get(String name) {
+        // ConcurrentHashMap publishes values safely, so a plain get is enough on the fast path
+        T instance = instances.get(name);
+        return instance != null ? instance : instances.computeIfAbsent(name, factory);
+    }
+}
+
+// Preallocated multi-producer ring buffer drained by one background thread into a FileChannel
+class AsyncLogAppender implements AutoCloseable {
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 50_000;
+    // An idle consumer parks progressively longer, up to this, instead of waking every 50 us
+    private static final long MAX_IDLE_PARK_NANOS = 10_000_000;
+    // Builders that grew past this are replaced after use, so one huge message is not kept per slot
+    static final int MAX_RETAINED_CHARS = 8 * 1024;
+    // Slot sequences sit a cache line apart, so neighbouring slots don't false-share
+    private static final int SEQUENCE_STRIDE = 8;
+    private static final DateTimeFormatter ROTATION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final StringBuilder[] slots;
+    // Per-slot sequence: equals seq when free for seq, seq + 1 once seq is published
+    private final AtomicLongArray sequences;
+    // Next sequence to claim; the sign bit is set once the appender is closed
+    private final AtomicLong claimCursor = new AtomicLong();
+    private final int mask;
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final long rotateIntervalNanos;
+    private FileChannel channel;
+    private long fileBytes;
+    private long fileOpenedNanos;
+
+    // Consumer-only state, reused for every message
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private char[] scratch = new char[256];
+    private CharBuffer scratchBuffer = CharBuffer.wrap(scratch);
+
+    private final Thread consumer;
+    // Set if the consumer thread dies, so producers stop waiting for slots it will never free
+    private volatile boolean failed;
+    private int batchMessages;
+    private volatile long droppedMessages;
+    // Consumer-only: set while writes keep failing, so an outage is reported once, not per batch
+    private long droppedAtFailure = -1;
+
+    AsyncLogAppender(Path file, int capacity, long maxFileBytes, Duration rotateInterval) throws IOException {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two >= 2");
+        }
+        this.slots = new StringBuilder[capacity];
+        this.sequences = new AtomicLongArray(capacity * SEQUENCE_STRIDE);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new StringBuilder(256);
+            sequences.set(i * SEQUENCE_STRIDE, i);
+        }
+        this.mask = capacity - 1;
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.rotateIntervalNanos = rotateInterval.toNanos();
+        openFile();
+        this.consumer = new Thread(this::drain, "async-log-appender");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    // Producer side: claim a slot, fill the returned builder, then publish(seq).
+    // Returns -1 once the appender is closed or broken; the caller must log elsewhere.
+    long claim() {
+        long seq;
+        do {
+            seq = claimCursor.get();
+            if (seq < 0) {
+                return -1;
+            }
+        } while (!claimCursor.compareAndSet(seq, seq + 1));
+        int index = ((int) seq & mask) * SEQUENCE_STRIDE;
+        int spins = 0;
+        while (sequences.get(index) != seq) {
+            if (failed) {
+                return -1;
+            }
+            // Ring is full: wake the consumer in case it is in a long idle park, then wait for it
+            if (spins == 0) {
+                LockSupport.unpark(consumer);
+            }
+            backOff(spins);
+            spins = Math.min(spins + 1, 40);
+        }
+        return seq;
+    }
+
+    // Messages lost because the file could not be written
+    long droppedMessages() {
+        return droppedMessages;
+    }
+
+    StringBuilder slot(long seq) {
+        StringBuilder sb = slots[(int) seq & mask];
+        sb.setLength(0);
+        return sb;
+    }
+
+    void publish(long seq) {
+        sequences.lazySet(((int) seq & mask) * SEQUENCE_STRIDE, seq + 1);
+    }
+
+    // Spin briefly, then yield, then park, so waiting never starves the other side on few cores
+    private static void backOff(int spins) {
+        if (spins < 32) {
+            Thread.onSpinWait();
+        } else if (spins < 40) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    // Consumer wait: the producers' back-off, then parks that double up to MAX_IDLE_PARK_NANOS.
+    // Returns the next idle count, capped so it can never wrap.
+    private static int idleWait(int idle) {
+        if (idle < 40) {
+            backOff(idle);
+        } else {
+            LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS << (idle - 40), MAX_IDLE_PARK_NANOS));
+        }
+        return Math.min(idle + 1, 48);
+    }
+
+    // I/O errors drop the current batch and are reported, but never stop the consumer,
+    // so slots keep being freed and producers never block on a dead appender
+    private void drain() {
+        long next = 0;
+        int idle = 0;
+        boolean closedNormally = false;
+        try {
+            while (true) {
+                int index = ((int) next & mask) * SEQUENCE_STRIDE;
+                if (sequences.get(index) == next + 1) {
+                    int slot = (int) next & mask;
+                    encode(slots[slot]);
+                    if (slots[slot].capacity() > MAX_RETAINED_CHARS) {
+                        // Published to the next producer by the lazySet below
+                        slots[slot] = new StringBuilder(256);
+                    }
+                    sequences.lazySet(index, next + slots.length);
+                    next++;
+                    idle = 0;
+                    continue;
+                }
+                // Nothing ready: write out the batch, then wait for producers
+                flush();
+                long cursor = claimCursor.get();
+                if (cursor < 0 && (cursor & Long.MAX_VALUE) == next) {
+                    closedNormally = true;
+                    break;
+                }
+                if (channel != null) {
+                    try {
+                        rotateIfDue(0);
+                    } catch (IOException e) {
+                        writeFailed(e, 0);
+                    }
+                }
+                idle = idleWait(idle);
+            }
+        } finally {
+            if (!closedNormally) {
+                failed = true;
+                markClosed();
+            }
+        }
+    }
+
+    private void encode(StringBuilder message) {
+        batchMessages++;
+        int length = message.length();
+        if (length > scratch.length) {
+            scratch = new char[Math.max(length, scratch.length * 2)];
+            scratchBuffer = CharBuffer.wrap(scratch);
+        }
+        message.getChars(0, length, scratch, 0);
+        scratchBuffer.clear().limit(length);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(scratchBuffer, batch, true);
+            if (!result.isOverflow()) {
+                break;
+            }
+            flush();
+        }
+        if (!batch.hasRemaining()) {
+            flush();
+        }
+        batch.put((byte) '\n');
+        if (scratch.length > MAX_RETAINED_CHARS) {
+            scratch = new char[256];
+            scratchBuffer = CharBuffer.wrap(scratch);
+        }
+    }
+
+    private void flush() {
+        if (batch.position() == 0) {
+            return;
+        }
+        try {
+            if (channel == null) {
+                openFile();
+            }
+            rotateIfDue(batch.position());
+            batch.flip();
+            while (batch.hasRemaining()) {
+                fileBytes += channel.write(batch);
+            }
+            if (droppedAtFailure >= 0) {
+                System.err.println("Async log writes to " + file + " recovered, "
+                        + (droppedMessages - droppedAtFailure) + " messages dropped meanwhile");
+                droppedAtFailure = -1;
+            }
+        } catch (IOException e) {
+            writeFailed(e, batchMessages);
+        }
+        batch.clear();
+        batchMessages = 0;
+    }
+
+    // Drops the file handle so the next flush reopens it, and reports the outage on stderr
+    private void writeFailed(IOException e, int lostMessages) {
+        if (droppedAtFailure < 0) {
+            droppedAtFailure = droppedMessages;
+            System.err.println("Async log write to " + file + " failed, dropping messages until it recovers: " + e);
+        }
+        droppedMessages += lostMessages;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            channel = null;
+        }
+    }
+
+    // Size- and time-based rotation; the current file is renamed with a timestamp suffix
+    private void rotateIfDue(int pendingBytes) throws IOException {
+        boolean tooBig = fileBytes > 0 && fileBytes + pendingBytes > maxFileBytes;
+        boolean tooOld = fileBytes > 0 && System.nanoTime() - fileOpenedNanos >= rotateIntervalNanos;
+        if (!tooBig && !tooOld) {
+            return;
+        }
+        channel.close();
+        channel = null;
+        String base = file.getFileName() + "." + LocalDateTime.now().format(ROTATION_SUFFIX);
+        Path rotated = file.resolveSibling(base);
+        for (int n = 1; Files.exists(rotated); n++) {
+            rotated = file.resolveSibling(base + "-" + n);
+        }
+        Files.move(file, rotated);
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+        fileOpenedNanos = System.nanoTime();
+    }
+
+    private void markClosed() {
+        long cursor;
+        do {
+            cursor = claimCursor.get();
+        } while (cursor >= 0 && !claimCursor.compareAndSet(cursor, cursor | Long.MIN_VALUE));
+    }
+
+    // Stops new claims, drains every message already claimed, then closes the file
+    @Override
+    public void close() throws IOException {
+        markClosed();
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
+
 public class SingletonPattern {
 
     // Static inner class implementing the Singleton pattern
-    private static class Logger {
-        private static Logger logger;
+    static class Logger {
+        static final String ROOT = "root";
+
+        private static final InstanceRegistry<Logger> REGISTRY = new InstanceRegistry<>(Logger::new);
+
+        // Per-thread formatting buffer, so parameterized calls reuse memory and threads never share one
+        private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+        // One sink shared by every named logger
+        private static volatile AsyncLogAppender appender;
+
+        static {
+            // Drain anything still queued in async mode when the JVM exits
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    disableAsync();
+                } catch (IOException e) {
+                    System.err.println("Failed to flush async log: " + e);
+                }
+            }, "logger-shutdown"));
+        }
+
+        // Holder idiom: class initialization publishes the root logger safely, with no lock or check per call
+        private static class Holder {
+            static final Logger INSTANCE = REGISTRY.get(ROOT);
+        }
+
+        private static final LogLevel[] LEVELS = LogLevel.values();
 
-        private Logger() {}
+        // Per-thread structured event, reused for every at() call on that thread that is not nested
+        private static final ThreadLocal<LogEvent> EVENT = ThreadLocal.withInitial(LogEvent::new);
+
+        private final String name;
+        private final String prefix;
+        private volatile int threshold = LogLevel.INFO.ordinal();
+        private final LongAdder[] emitted = new LongAdder[LEVELS.length];
+        private final LongAdder[] dropped = new LongAdder[LEVELS.length];
+
+        private Logger(String name) {
+            this.name = name;
+            this.prefix = ROOT.equals(name) ? null : name + ": ";
+            for (int i = 0; i < LEVELS.length; i++) {
+                emitted[i] = new LongAdder();
+                dropped[i] = new LongAdder();
+            }
+        }
 
         public static Logger getInstance() {
-            if (logger == null) {
-                synchronized (Logger.class) {
-                    if (logger == null) {
-                        logger = new Logger();
+            return Holder.INSTANCE;
+        }
+
+        public static Logger getLogger(String name) {
+            return REGISTRY.get(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setLevel(LogLevel level) {
+            threshold = level.ordinal();
+        }
+
+        public boolean isEnabled(LogLevel level) {
+            return level.ordinal() >= threshold;
+        }
+
+        public long emittedCount(LogLevel level) {
+            return emitted[level.ordinal()].sum();
+        }
+
+        // Messages rejected by a sampler; messages below the threshold are not counted
+        public long droppedCount(LogLevel level) {
+            return dropped[level.ordinal()].sum();
+        }
+
+        private boolean admit(LogLevel level) {
+            if (level.ordinal() < threshold) {
+                return false;
+            }
+            emitted[level.ordinal()].increment();
+            return true;
+        }
+
+        // Leveled messages are written as "LEVEL message"
+        public void log(LogLevel level, String message) {
+            if (!admit(level)) {
+                return;
+            }
+            write(tagged(level).append(message));
+        }
+
+        // The supplier only runs when the level is enabled, and before the line buffer is taken,
+        // so a supplier that logs cannot overwrite it
+        public void log(LogLevel level, Supplier<String> message) {
+            if (!admit(level)) {
+                return;
+            }
+            String text = message.get();
+            write(tagged(level).append(text));
+        }
+
+        public void trace(String message) {
+            log(LogLevel.TRACE, message);
+        }
+
+        public void trace(Supplier<String> message) {
+            log(LogLevel.TRACE, message);
+        }
+
+        public void debug(String message) {
+            log(LogLevel.DEBUG, message);
+        }
+
+        public void debug(Supplier<String> message) {
+            log(LogLevel.DEBUG, message);
+        }
+
+        public void info(String message) {
+            log(LogLevel.INFO, message);
+        }
+
+        public void info(Supplier<String> message) {
+            log(LogLevel.INFO, message);
+        }
+
+        public void warn(String message) {
+            log(LogLevel.WARN, message);
+        }
+
+        public void warn(Supplier<String> message) {
+            log(LogLevel.WARN, message);
+        }
+
+        public void error(String message) {
+            log(LogLevel.ERROR, message);
+        }
+
+        public void error(Supplier<String> message) {
+            log(LogLevel.ERROR, message);
+        }
+
+        // Structured event written as one JSON line; a disabled level returns a no-op event
+        public LogEvent at(LogLevel level) {
+            if (level.ordinal() < threshold) {
+                return LogEvent.DISABLED;
+            }
+            return event().begin(this, level);
+        }
+
+        // Same as at(level), but events beyond the sampler's rate are dropped and counted
+        public LogEvent at(LogLevel level, LogSampler sampler) {
+            if (level.ordinal() < threshold) {
+                return LogEvent.DISABLED;
+            }
+            if (!sampler.tryAcquire()) {
+                dropped[level.ordinal()].increment();
+                return LogEvent.DISABLED;
+            }
+            return event().begin(this, level);
+        }
+
+        // An at() made while this thread's event is still being built (say, by code computing a
+        // field value) gets a fresh event, so it cannot clobber the outer one
+        private static LogEvent event() {
+            LogEvent event = EVENT.get();
+            return event.building ? new LogEvent() : event;
+        }
+
+        private StringBuilder tagged(LogLevel level) {
+            StringBuilder sb = lineBuffer();
+            sb.append(level.name()).append(' ');
+            if (prefix != null) {
+                sb.append(prefix);
+            }
+            return sb;
+        }
+
+        // Collects key/value fields, then writes {"ts":..,"level":..,"logger":..,"msg":..,fields...}.
+        // Finish every event with log(); an abandoned event makes later at() calls on the thread allocate.
+        static class LogEvent {
+            static final LogEvent DISABLED = new LogEvent();
+            private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+            private StringBuilder fields = new StringBuilder(128);
+            private Logger logger;
+            private LogLevel level;
+            // True between begin() and log()
+            private boolean building;
+
+            LogEvent begin(Logger logger, LogLevel level) {
+                this.logger = logger;
+                this.level = level;
+                this.building = true;
+                if (fields.capacity() > AsyncLogAppender.MAX_RETAINED_CHARS) {
+                    fields = new StringBuilder(128);
+                }
+                fields.setLength(0);
+                return this;
+            }
+
+            private boolean disabled() {
+                return this == DISABLED;
+            }
+
+            public LogEvent field(String key, long value) {
+                if (!disabled()) {
+                    key(key).append(value);
+                }
+                return this;
+            }
+
+            // JSON has no NaN or Infinity, so those are written as strings
+            public LogEvent field(String key, double value) {
+                if (!disabled()) {
+                    StringBuilder sb = key(key);
+                    if (Double.isFinite(value)) {
+                        sb.append(value);
+                    } else {
+                        sb.append('"').append(value).append('"');
                     }
                 }
+                return this;
+            }
+
+            public LogEvent field(String key, boolean value) {
+                if (!disabled()) {
+                    key(key).append(value);
+                }
+                return this;
             }
-            return logger;
+
+            public LogEvent field(String key, CharSequence value) {
+                if (!disabled()) {
+                    appendJsonString(key(key), value);
+                }
+                return this;
+            }
+
+            public void log(String message) {
+                if (disabled()) {
+                    return;
+                }
+                building = false;
+                logger.emitted[level.ordinal()].increment();
+                StringBuilder sb = lineBuffer();
+                sb.append("{\"ts\":").append(System.currentTimeMillis())
+                  .append(",\"level\":\"").append(level.name())
+                  .append("\",\"logger\":");
+                appendJsonString(sb, logger.name).append(",\"msg\":");
+                appendJsonString(sb, message).append(fields).append('}');
+                write(sb);
+            }
+
+            private StringBuilder key(String key) {
+                fields.append(',');
+                return appendJsonString(fields, key).append(':');
+            }
+
+            private static StringBuilder appendJsonString(StringBuilder sb, CharSequence value) {
+                sb.append('"');
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        sb.append('\\').append(c);
+                    } else if (c < 0x20) {
+                        sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                return sb.append('"');
+            }
+        }
+
+        // Switches to async mode: callers only copy the message into a ring slot
+        public static synchronized void enableAsync(Path file, int capacity, long maxFileBytes, Duration rotateInterval)
+                throws IOException {
+            disableAsync();
+            appender = new AsyncLogAppender(file, capacity, maxFileBytes, rotateInterval);
         }
 
+        public static synchronized void disableAsync() throws IOException {
+            AsyncLogAppender current = appender;
+            if (current != null) {
+                appender = null;
+                current.close();
+            }
+        }
+
+        // The untagged log methods are INFO messages, written exactly as given
         public void log(String message) {
-            System.out.println(message);
+            if (!admit(LogLevel.INFO)) {
+                return;
+            }
+            if (prefix == null) {
+                write(message);
+            } else {
+                write(line().append(message));
+            }
+        }
+
+        // Parameterized messages: each "{}" in the pattern is replaced by the next argument
+        public void log(String pattern, long arg) {
+            if (!admit(LogLevel.INFO)) {
+                return;
+            }
+            StringBuilder sb = line();
+            int i = appendUntilPlaceholder(sb, pattern, 0);
+            if (i >= 0) {
+                sb.append(arg);
+                appendUntilPlaceholder(sb, pattern, i);
+            }
+            write(sb);
+        }
+
+        public void log(String pattern, long arg1, long arg2) {
+            if (!admit(LogLevel.INFO)) {
+                return;
+            }
+            StringBuilder sb = line();
+            int i = appendUntilPlaceholder(sb, pattern, 0);
+            if (i >= 0) {
+                sb.append(arg1);
+                i = appendUntilPlaceholder(sb, pattern, i);
+                if (i >= 0) {
+                    sb.append(arg2);
+                    appendUntilPlaceholder(sb, pattern, i);
+                }
+            }
+            write(sb);
+        }
+
+        // Arguments are turned into strings first: a toString() that logs would reuse the line buffer
+        public void log(String pattern, Object arg) {
+            if (!admit(LogLevel.INFO)) {
+                return;
+            }
+            String text = String.valueOf(arg);
+            StringBuilder sb = line();
+            int i = appendUntilPlaceholder(sb, pattern, 0);
+            if (i >= 0) {
+                sb.append(text);
+                appendUntilPlaceholder(sb, pattern, i);
+            }
+            write(sb);
+        }
+
+        public void log(String pattern, Object arg1, Object arg2) {
+            if (!admit(LogLevel.INFO)) {
+                return;
+            }
+            String text1 = String.valueOf(arg1);
+            String text2 = String.valueOf(arg2);
+            StringBuilder sb = line();
+            int i = appendUntilPlaceholder(sb, pattern, 0);
+            if (i >= 0) {
+                sb.append(text1);
+                i = appendUntilPlaceholder(sb, pattern, i);
+                if (i >= 0) {
+                    sb.append(text2);
+                    appendUntilPlaceholder(sb, pattern, i);
+                }
+            }
+            write(sb);
+        }
+
+        private StringBuilder line() {
+            StringBuilder sb = lineBuffer();
+            if (prefix != null) {
+                sb.append(prefix);
+            }
+            return sb;
+        }
+
+        // The thread's buffer, emptied; swapped for a small one if a huge message made it grow
+        private static StringBuilder lineBuffer() {
+            StringBuilder sb = LINE.get();
+            if (sb.capacity() > AsyncLogAppender.MAX_RETAINED_CHARS) {
+                sb = new StringBuilder(256);
+                LINE.set(sb);
+            }
+            sb.setLength(0);
+            return sb;
+        }
+
+        // Messages are formatted before claiming, so a slot is only held for the copy
+        private static void write(CharSequence message) {
+            AsyncLogAppender current = appender;
+            if (current == null) {
+                System.out.println(message);
+                return;
+            }
+            long seq = current.claim();
+            if (seq < 0) {
+                // Appender closed or broken under us: fall back to synchronous output
+                System.out.println(message);
+                return;
+            }
+            current.slot(seq).append(message);
+            current.publish(seq);
+        }
+
+        // Appends pattern text up to the next "{}" and returns the index after it, or -1 at the end
+        private static int appendUntilPlaceholder(StringBuilder sb, String pattern, int from) {
+            int placeholder = pattern.indexOf("{}", from);
+            if (placeholder < 0) {
+                sb.append(pattern, from, pattern.length());
+                return -1;
+            }
+            sb.append(pattern, from, placeholder);
+            return placeholder + 2;
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Logger logger = Logger.getInstance();
         logger.log("This is a singleton logger example.");
+
+        if (args.length > 0) {
+            // Async mode: SingletonPattern <log file>
+            Logger.enableAsync(Paths.get(args[0]), 1024, 10 * 1024 * 1024, Duration.ofHours(1));
+            for (int i = 0; i < 5; i++) {
+                logger.log("Async message {} of {}", i + 1, 5);
+            }
+            Logger.getLogger("worker").log("Named logger message");
+
+            Logger events = Logger.getLogger("events");
+            events.setLevel(LogLevel.DEBUG);
+            LogSampler sampler = LogSampler.perSecond(3);
+            for (int i = 0; i < 10; i++) {
+                events.at(LogLevel.DEBUG, sampler).field("tick", i).field("source", "demo").log("Sampled event");
+            }
+            events.trace(() -> "Never built: TRACE is below the DEBUG threshold");
+            events.warn("Emitted " + events.emittedCount(LogLevel.DEBUG)
+                    + " debug events, dropped " + events.droppedCount(LogLevel.DEBUG));
+            Logger.disableAsync();
+        }
     }
 }
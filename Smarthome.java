@@ -11,6 +11,35 @@ package smarthome;
 import java.util.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 // Observer interface
 interface Observer {
@@ -30,8 +59,16 @@ class SmartHomeHub implements Subject {
     private Map<Integer, SmartDevice> devices;
     private List<ScheduledTask> scheduledTasks;
     private List<Trigger> triggers;
+    private final HubMetrics metrics = new HubMetrics();
+    // Time source for the schedule; simulations pass their own
+    private final Clock clock;
 
     public SmartHomeHub() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public SmartHomeHub(Clock clock) {
+        this.clock = clock;
         observers = new ArrayList<>();
         devices = new HashMap<>();
         scheduledTasks = new ArrayList<>();
@@ -47,9 +84,15 @@ class SmartHomeHub implements Subject {
     }
 
     public void notifyObservers() {
+        long start = System.nanoTime();
         for (Observer observer : observers) {
             observer.update();
         }
+        metrics.record(HubOperation.NOTIFY, start);
+    }
+
+    public HubMetrics getMetrics() {
+        return metrics;
     }
 
     public void addDevice(SmartDevice device) {
@@ -58,18 +101,22 @@ class SmartHomeHub implements Subject {
     }
 
     public void turnOn(int id) {
+        long start = System.nanoTime();
         SmartDevice device = devices.get(id);
         if (device != null) {
             device.turnOn();
             notifyObservers();
+            metrics.recordCommand(HubOperation.TURN_ON, device, start);
         }
     }
 
     public void turnOff(int id) {
+        long start = System.nanoTime();
         SmartDevice device = devices.get(id);
         if (device != null) {
             device.turnOff();
             notifyObservers();
+            metrics.recordCommand(HubOperation.TURN_OFF, device, start);
         }
     }
 
@@ -120,26 +167,58 @@ class SmartHomeHub implements Subject {
     }
 
     public void executeScheduledTasks() {
-        LocalTime now = LocalTime.now();
+        executeScheduledTasks(LocalTime.now(clock));
+    }
+
+    // Runs the tasks due at the given time, which may be in the past when a sweep runs late.
+    // Lag is measured on the hub's clock: when the task ran minus the time it was due.
+    public void executeScheduledTasks(LocalTime due) {
+        long start = System.nanoTime();
         for (ScheduledTask task : scheduledTasks) {
-            if (task.time.equals(now)) {
-                if (task.command.equalsIgnoreCase("turn on")) {
-                    turnOn(task.id);
-                } else if (task.command.equalsIgnoreCase("turn off")) {
-                    turnOff(task.id);
+            if (task.time.equals(due)) {
+                try {
+                    if (task.command.equalsIgnoreCase("turn on")) {
+                        turnOn(task.id);
+                    } else if (task.command.equalsIgnoreCase("turn off")) {
+                        turnOff(task.id);
+                    }
+                } catch (SecurityException e) {
+                    // A device the caller may not touch must not stop the rest of the sweep
+                    metrics.recordDenied();
                 }
+                metrics.recordNanos(HubOperation.SCHEDULE_LAG, nanosSince(task.time));
+                // Sweep progress: how long after the sweep started this task finished
+                metrics.record(HubOperation.SCHEDULE_SWEEP_PROGRESS, start);
             }
         }
+        metrics.record(HubOperation.EXECUTE_SCHEDULED_TASKS, start);
+    }
+
+    // Time of day elapsed since the given time, wrapping past midnight
+    private long nanosSince(LocalTime time) {
+        long lag = LocalTime.now(clock).toNanoOfDay() - time.toNanoOfDay();
+        return lag >= 0 ? lag : lag + Duration.ofDays(1).toNanos();
     }
 
     public void evaluateTriggers() {
+        long start = System.nanoTime();
+        evaluateTriggersUntimed();
+        metrics.record(HubOperation.EVALUATE_TRIGGERS, start);
+    }
+
+    private void evaluateTriggersUntimed() {
         for (Trigger trigger : triggers) {
             for (SmartDevice device : devices.values()) {
                 if (trigger.condition.equalsIgnoreCase("temperature") && device instanceof Thermostat) {
                     Thermostat thermostat = (Thermostat) device;
                     if (trigger.operator.equals(">") && thermostat.getTemperature() > trigger.value) {
                         if (trigger.action.equalsIgnoreCase("turnOff(1)")) {
-                            turnOff(1);
+                            try {
+                                turnOff(1);
+                            } catch (SecurityException e) {
+                                // Same as the schedule: count the denial and keep evaluating
+                                metrics.recordDenied();
+                            }
                         }
                     }
                 }
@@ -288,21 +367,37 @@ class SmartDeviceFactory {
 // Proxy Pattern for controlling access to the devices
 class SmartDeviceProxy extends SmartDevice {
     private SmartDevice device;
+    private final AccessPolicy policy;
 
+    // Unrestricted proxy: every request is forwarded
     public SmartDeviceProxy(SmartDevice device) {
+        this(device, null);
+    }
+
+    public SmartDeviceProxy(SmartDevice device, AccessPolicy policy) {
         super(device.getId(), device.getType());
         this.device = device;
+        this.policy = policy;
+        if (policy != null) {
+            policy.registerDevice(device.getId(), device.getType());
+        }
     }
 
     @Override
     void turnOn() {
         // Check permissions, then forward request
+        if (policy != null) {
+            policy.authorize(id, DeviceAction.TURN_ON);
+        }
         device.turnOn();
     }
 
     @Override
     void turnOff() {
         // Check permissions, then forward request
+        if (policy != null) {
+            policy.authorize(id, DeviceAction.TURN_OFF);
+        }
         device.turnOff();
     }
 
@@ -317,6 +412,288 @@ class SmartDeviceProxy extends SmartDevice {
     }
 }
 
+enum DeviceAction {
+    TURN_ON, TURN_OFF
+}
+
+// Grants a user or role some actions on devices (by id or type), optionally only inside a daily time window
+class AccessRule {
+    final String principal;
+    final Set<DeviceAction> actions;
+    final BitSet deviceIds;
+    final String deviceType;
+    final LocalTime from;
+    final LocalTime to;
+
+    private AccessRule(String principal, Set<DeviceAction> actions, BitSet deviceIds, String deviceType,
+                       LocalTime from, LocalTime to) {
+        this.principal = principal;
+        this.actions = EnumSet.copyOf(actions);
+        this.deviceIds = deviceIds;
+        this.deviceType = deviceType;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static AccessRule allowDevices(String principal, Set<DeviceAction> actions, int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) {
+            bits.set(id);
+        }
+        return new AccessRule(principal, actions, bits, null, null, null);
+    }
+
+    public static AccessRule allowType(String principal, Set<DeviceAction> actions, String deviceType) {
+        return new AccessRule(principal, actions, new BitSet(), deviceType.toLowerCase(), null, null);
+    }
+
+    // Restricts the rule to [from, to) each day; a window with from after to wraps past midnight
+    public AccessRule between(LocalTime from, LocalTime to) {
+        return new AccessRule(principal, actions, deviceIds, deviceType, from, to);
+    }
+
+    boolean isTimed() {
+        return from != null;
+    }
+
+    boolean activeAt(LocalTime time) {
+        if (from == null) {
+            return true;
+        }
+        if (from.isBefore(to)) {
+            return !time.isBefore(from) && time.isBefore(to);
+        }
+        return !time.isBefore(from) || time.isBefore(to);
+    }
+
+    // Nanoseconds from time until the window next opens or closes
+    // Rounded up, so a cache expiring after this many millis never outlives the window
+    long millisUntilBoundary(LocalTime time) {
+        long now = time.toNanoOfDay();
+        long nanos = Math.min(untilNext(now, from.toNanoOfDay()), untilNext(now, to.toNanoOfDay()));
+        return (nanos + 999_999) / 1_000_000;
+    }
+
+    private static long untilNext(long now, long boundary) {
+        long day = Duration.ofDays(1).toNanos();
+        long delta = boundary - now;
+        return delta > 0 ? delta : delta + day;
+    }
+}
+
+// Policy engine behind SmartDeviceProxy. Rules are compiled into per-principal
+// device-id bitsets; each principal caches the bitset in force right now until
+// its TTL runs out, a time window opens or closes, or the policy changes.
+class AccessPolicy {
+    private final List<AccessRule> rules = new ArrayList<>();
+    private final Map<String, Set<String>> rolesByUser = new HashMap<>();
+    private final Map<Integer, String> deviceTypes = new HashMap<>();
+    private final ThreadLocal<String> currentPrincipal = new ThreadLocal<>();
+    private final Clock clock;
+    private final long ttlMillis;
+
+    // Replaced wholesale on recompile, which also drops every cached decision
+    private volatile Map<String, CompiledPrincipal> compiled = Collections.emptyMap();
+    private volatile boolean dirty;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public AccessPolicy() {
+        this(Clock.systemDefaultZone(), Duration.ofSeconds(30));
+    }
+
+    public AccessPolicy(Clock clock, Duration cacheTtl) {
+        this.clock = clock;
+        this.ttlMillis = cacheTtl.toMillis();
+    }
+
+    public synchronized void addRule(AccessRule rule) {
+        rules.add(rule);
+        dirty = true;
+    }
+
+    public synchronized void clearRules() {
+        rules.clear();
+        dirty = true;
+    }
+
+    public synchronized void assignRole(String user, String role) {
+        rolesByUser.computeIfAbsent(user, u -> new HashSet<>()).add(role);
+        dirty = true;
+    }
+
+    // Compilation is deferred to the next check, so registering a large fleet costs one compile
+    public synchronized void registerDevice(int id, String type) {
+        if (!type.equalsIgnoreCase(deviceTypes.put(id, type.toLowerCase()))) {
+            dirty = true;
+        }
+    }
+
+    // Runs the action with the given user as the caller of every proxied command
+    public void runAs(String principal, Runnable action) {
+        callAs(principal, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Same as runAs, for actions that return a result
+    public <T> T callAs(String principal, Supplier<T> action) {
+        String previous = currentPrincipal.get();
+        currentPrincipal.set(principal);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                currentPrincipal.remove();
+            } else {
+                currentPrincipal.set(previous);
+            }
+        }
+    }
+
+    void authorize(int deviceId, DeviceAction action) {
+        String principal = currentPrincipal.get();
+        if (!isAllowed(principal, deviceId, action)) {
+            throw new SecurityException((principal == null ? "anonymous caller" : principal)
+                    + " may not " + action.name().toLowerCase() + " device " + deviceId);
+        }
+    }
+
+    public boolean isAllowed(String principal, int deviceId, DeviceAction action) {
+        if (dirty) {
+            recompile();
+        }
+        CompiledPrincipal access = principal == null ? null : compiled.get(principal);
+        if (access == null) {
+            // Unknown callers have nothing cached; count them so the hit rate covers every check
+            cacheMisses.increment();
+        }
+        boolean granted = access != null && access.effective(action).get(deviceId);
+        (granted ? allowed : denied).increment();
+        return granted;
+    }
+
+    private synchronized void recompile() {
+        if (!dirty) {
+            return;
+        }
+        Map<String, BitSet> devicesByType = new HashMap<>();
+        for (Map.Entry<Integer, String> device : deviceTypes.entrySet()) {
+            devicesByType.computeIfAbsent(device.getValue(), t -> new BitSet()).set(device.getKey());
+        }
+        Set<String> principals = new HashSet<>(rolesByUser.keySet());
+        for (AccessRule rule : rules) {
+            principals.add(rule.principal);
+        }
+        Map<String, CompiledPrincipal> result = new HashMap<>();
+        for (String principal : principals) {
+            Set<String> names = new HashSet<>(rolesByUser.getOrDefault(principal, Collections.emptySet()));
+            names.add(principal);
+            CompiledPrincipal access = new CompiledPrincipal();
+            for (AccessRule rule : rules) {
+                if (!names.contains(rule.principal)) {
+                    continue;
+                }
+                BitSet bits = (BitSet) rule.deviceIds.clone();
+                if (rule.deviceType != null) {
+                    bits.or(devicesByType.getOrDefault(rule.deviceType, new BitSet()));
+                }
+                for (DeviceAction action : rule.actions) {
+                    access.add(action, rule, bits);
+                }
+            }
+            result.put(principal, access);
+        }
+        compiled = result;
+        dirty = false;
+    }
+
+    public long allowedCount() {
+        return allowed.sum();
+    }
+
+    public long deniedCount() {
+        return denied.sum();
+    }
+
+    public double cacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public String toPrometheus() {
+        return "# TYPE smarthome_authorization_total counter\n"
+                + "smarthome_authorization_total{outcome=\"allowed\"} " + allowed.sum() + "\n"
+                + "smarthome_authorization_total{outcome=\"denied\"} " + denied.sum() + "\n"
+                + "# TYPE smarthome_authorization_cache_total counter\n"
+                + "smarthome_authorization_cache_total{result=\"hit\"} " + cacheHits.sum() + "\n"
+                + "smarthome_authorization_cache_total{result=\"miss\"} " + cacheMisses.sum() + "\n";
+    }
+
+    // Compiled grants of one principal: untimed bits plus the timed rules, per action
+    private class CompiledPrincipal {
+        private final BitSet[] always = new BitSet[DeviceAction.values().length];
+        private final List<List<Map.Entry<AccessRule, BitSet>>> timed = new ArrayList<>();
+        private final AtomicReferenceArray<CachedAccess> cache = new AtomicReferenceArray<>(always.length);
+
+        CompiledPrincipal() {
+            for (int i = 0; i < always.length; i++) {
+                always[i] = new BitSet();
+                timed.add(new ArrayList<>());
+            }
+        }
+
+        void add(DeviceAction action, AccessRule rule, BitSet bits) {
+            if (rule.isTimed()) {
+                timed.get(action.ordinal()).add(new AbstractMap.SimpleImmutableEntry<>(rule, bits));
+            } else {
+                always[action.ordinal()].or(bits);
+            }
+        }
+
+        // Expiry follows the injected clock, so a test clock moves windows and TTL together
+        BitSet effective(DeviceAction action) {
+            long now = clock.millis();
+            CachedAccess cached = cache.get(action.ordinal());
+            if (cached != null && now - cached.expiresAt < 0) {
+                cacheHits.increment();
+                return cached.devices;
+            }
+            cacheMisses.increment();
+            List<Map.Entry<AccessRule, BitSet>> windows = timed.get(action.ordinal());
+            BitSet devices = always[action.ordinal()];
+            long validFor = ttlMillis;
+            if (!windows.isEmpty()) {
+                LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(now), clock.getZone());
+                devices = (BitSet) devices.clone();
+                for (Map.Entry<AccessRule, BitSet> window : windows) {
+                    if (window.getKey().activeAt(time)) {
+                        devices.or(window.getValue());
+                    }
+                    validFor = Math.min(validFor, window.getKey().millisUntilBoundary(time));
+                }
+            }
+            cache.set(action.ordinal(), new CachedAccess(devices, now + validFor));
+            return devices;
+        }
+    }
+
+    private static class CachedAccess {
+        final BitSet devices;
+        final long expiresAt;
+
+        CachedAccess(BitSet devices, long expiresAt) {
+            this.devices = devices;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
 // Helper classes for scheduling and triggers
 class ScheduledTask {
     int id;
@@ -344,9 +721,979 @@ class Trigger {
     }
 }
 
+// Instrumented hub operations
+enum HubOperation {
+    TURN_ON, TURN_OFF, NOTIFY, EVALUATE_TRIGGERS, EXECUTE_SCHEDULED_TASKS, SCHEDULE_LAG, SCHEDULE_SWEEP_PROGRESS;
+
+    final String label = name().toLowerCase(Locale.ROOT);
+}
+
+// Log-linear latency histogram: 8 sub-buckets per power of two, so any value is within 12.5%
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Largest value that falls in the bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long base = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return base + (1L << shift) - 1;
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), max.get());
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long sum;
+        final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // Upper bound of the bucket holding the given quantile, capped at the recorded max
+        long percentile(double quantile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
+
+// JFR event for hub commands slower than HubMetrics' threshold
+@Name("smarthome.SlowCommand")
+@Label("Slow Hub Command")
+@Category("Smart Home")
+@Description("A SmartHomeHub command that took longer than the slow-command threshold")
+class SlowCommandEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Device Id")
+    int deviceId;
+
+    @Label("Device Type")
+    String deviceType;
+
+    @Label("Latency (ns)")
+    long latencyNanos;
+}
+
+// Per-operation latency histograms and per-device-type command counters for one hub
+class HubMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[HubOperation.values().length];
+    private final Map<String, LongAdder[]> commandsByType = new ConcurrentHashMap<>();
+    // Scheduled or triggered commands the access policy refused
+    private final LongAdder deniedCommands = new LongAdder();
+    private volatile long slowCommandNanos = 10_000_000;
+
+    HubMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void setSlowCommandThreshold(Duration threshold) {
+        slowCommandNanos = threshold.toNanos();
+    }
+
+    void record(HubOperation operation, long startNanos) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    // Counted, not logged: a denied trigger would otherwise log on every evaluation pass
+    void recordDenied() {
+        deniedCommands.increment();
+    }
+
+    public long deniedCommandCount() {
+        return deniedCommands.sum();
+    }
+
+    // For durations not measured from a System.nanoTime() start, such as schedule lag
+    void recordNanos(HubOperation operation, long nanos) {
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    void recordCommand(HubOperation operation, SmartDevice device, long startNanos) {
+        long latency = System.nanoTime() - startNanos;
+        latencies[operation.ordinal()].record(latency);
+        LongAdder[] counters = commandsByType.get(device.getType());
+        if (counters == null) {
+            counters = commandsByType.computeIfAbsent(device.getType(), t -> newCounters());
+        }
+        counters[operation.ordinal()].increment();
+        if (latency > slowCommandNanos) {
+            SlowCommandEvent event = new SlowCommandEvent();
+            if (event.shouldCommit()) {
+                event.operation = operation.label;
+                event.deviceId = device.getId();
+                event.deviceType = device.getType();
+                event.latencyNanos = latency;
+                event.commit();
+            }
+        }
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[HubOperation.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    public LatencyHistogram.Snapshot latency(HubOperation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    public long commandCount(String deviceType, HubOperation operation) {
+        LongAdder[] counters = commandsByType.get(deviceType);
+        return counters == null ? 0 : counters[operation.ordinal()].sum();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        commandsByType.clear();
+    }
+
+    // Prometheus text exposition format; latencies are summaries in seconds
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP smarthome_operation_latency_seconds Latency of SmartHomeHub operations\n");
+        out.append("# TYPE smarthome_operation_latency_seconds summary\n");
+        for (HubOperation operation : HubOperation.values()) {
+            LatencyHistogram.Snapshot snapshot = latency(operation);
+            for (double quantile : QUANTILES) {
+                out.append("smarthome_operation_latency_seconds{operation=\"").append(operation.label)
+                   .append("\",quantile=\"").append(quantile).append("\"} ")
+                   .append(snapshot.percentile(quantile) / 1e9).append('\n');
+            }
+            out.append("smarthome_operation_latency_seconds_sum{operation=\"").append(operation.label)
+               .append("\"} ").append(snapshot.sum / 1e9).append('\n');
+            out.append("smarthome_operation_latency_seconds_count{operation=\"").append(operation.label)
+               .append("\"} ").append(snapshot.count).append('\n');
+        }
+        out.append("# HELP smarthome_device_commands_total Commands executed per device type\n");
+        out.append("# TYPE smarthome_device_commands_total counter\n");
+        for (Map.Entry<String, LongAdder[]> entry : new TreeMap<>(commandsByType).entrySet()) {
+            for (HubOperation operation : new HubOperation[] {HubOperation.TURN_ON, HubOperation.TURN_OFF}) {
+                out.append("smarthome_device_commands_total{type=\"").append(entry.getKey())
+                   .append("\",operation=\"").append(operation.label).append("\"} ")
+                   .append(entry.getValue()[operation.ordinal()].sum()).append('\n');
+            }
+        }
+        out.append("# HELP smarthome_denied_commands_total Scheduled and triggered commands refused by the access policy\n");
+        out.append("# TYPE smarthome_denied_commands_total counter\n");
+        out.append("smarthome_denied_commands_total ").append(deniedCommands.sum()).append('\n');
+        return out.toString();
+    }
+
+    // Written to a temp file and moved into place, so scrapers never read a partial dump
+    public void writePrometheus(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, toPrometheus().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Serves the dump at http://localhost:port/metrics; stop the returned server when done
+    public HttpServer servePrometheus(int port) throws IOException {
+        return servePrometheus(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    // Pass an explicit address to expose the metrics beyond this host
+    public HttpServer servePrometheus(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
+
+// One client connection: a fixed input buffer, plus output that did not fit in the socket yet
+class HubConnection {
+    final SocketChannel channel;
+    final ByteBuffer in;
+    ByteBuffer pending;
+    boolean endOfInput;
+    boolean closeAfterFlush;
+    // Set by a successful "auth <token>" line; null means anonymous
+    String principal;
+
+    HubConnection(SocketChannel channel, int maxLineBytes) {
+        this.channel = channel;
+        this.in = ByteBuffer.allocate(maxLineBytes);
+    }
+}
+
+// Selector-based TCP front end for a SmartHomeHub. Clients send one command per line in the
+// Smarthome grammar, e.g. turnOn(1) or setSchedule(2, "06:00", "Turn On"), plus the report
+// commands status, schedules and triggers. Each line gets one "OK ..." or "ERR ..." line back.
+// Clients may pipeline: every complete line in a read is executed and the replies are written
+// together. All commands run on the selector thread, so the hub needs no locking.
+// With an access policy set, a client sends "auth <token>" first and its commands then run as
+// the token's principal; commands from a client that has not authenticated run as anonymous.
+class HubCommandServer implements Closeable {
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final SmartHomeHub hub;
+    private final InetSocketAddress address;
+    private final int maxConnections;
+    private final int maxLineBytes;
+    private AccessPolicy policy;
+    private Map<String, String> principalsByToken = Collections.emptyMap();
+    // Cap on reply bytes held for all clients that are not reading; a client that would push the
+    // total past it is disconnected, so memory stays bounded however many connections stall
+    private long maxPendingBytes = 64L * 1024 * 1024;
+    // Only the selector thread writes it
+    private volatile long pendingBytes;
+
+    // Replies are staged here and only copied into a connection when the socket is full
+    private final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private SelectionKey serverKey;
+    private Thread loop;
+    private volatile boolean running;
+    // Only the selector thread writes it; volatile so connectionCount() sees the latest value
+    private volatile int connections;
+    private boolean acceptPaused;
+    private boolean acceptFailing;
+    private long acceptResumeAt;
+
+    public HubCommandServer(SmartHomeHub hub, InetSocketAddress address) {
+        this(hub, address, 50_000, 1024);
+    }
+
+    public HubCommandServer(SmartHomeHub hub, InetSocketAddress address, int maxConnections, int maxLineBytes) {
+        this.hub = hub;
+        this.address = address;
+        this.maxConnections = maxConnections;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    // Runs every command as the connection's principal; call before start()
+    public synchronized void setAccessPolicy(AccessPolicy policy, Map<String, String> principalsByToken) {
+        this.policy = policy;
+        this.principalsByToken = new HashMap<>(principalsByToken);
+    }
+
+    // Call before start()
+    public synchronized void setPendingBudget(long bytes) {
+        maxPendingBytes = bytes;
+    }
+
+    // Reply bytes currently held for clients whose sockets are full
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    public synchronized void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(address, 4096);
+        server.configureBlocking(false);
+        serverKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        loop = new Thread(this::run, "hub-command-server");
+        loop.start();
+    }
+
+    // Useful when bound to port 0
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int connectionCount() {
+        return connections;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(acceptPaused ? ACCEPT_BACKOFF_MILLIS : 0);
+                if (acceptPaused && System.nanoTime() - acceptResumeAt >= 0) {
+                    acceptPaused = false;
+                    serverKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isWritable()) {
+                                flushPending(key);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // One broken client must not take the server down
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Command server stopped: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+        }
+    }
+
+    // Accept failures never close the listening socket; a failed client only loses its own connection
+    private void accept() {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                // Usually out of file descriptors: pause accepting instead of spinning on the error
+                if (!acceptFailing) {
+                    System.err.println("Accept failed, retrying every " + ACCEPT_BACKOFF_MILLIS + " ms: " + e);
+                    acceptFailing = true;
+                }
+                serverKey.interestOps(0);
+                acceptPaused = true;
+                acceptResumeAt = System.nanoTime() + ACCEPT_BACKOFF_MILLIS * 1_000_000;
+                return;
+            }
+            if (client == null) {
+                return;
+            }
+            acceptFailing = false;
+            if (connections >= maxConnections) {
+                closeQuietly(client);
+                continue;
+            }
+            try {
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                client.register(selector, SelectionKey.OP_READ, new HubConnection(client, maxLineBytes));
+                connections++;
+            } catch (IOException e) {
+                closeQuietly(client);
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        HubConnection connection = (HubConnection) key.attachment();
+        int read = connection.channel.read(connection.in);
+        if (read < 0) {
+            connection.endOfInput = true;
+            connection.closeAfterFlush = true;
+        }
+        processLines(key, connection);
+    }
+
+    // Executes every complete line, writing replies in batches; stops early if the socket fills up
+    private void processLines(SelectionKey key, HubConnection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        out.clear();
+        int lineStart = in.position();
+        boolean socketFull = false;
+        for (int i = lineStart; i < in.limit(); i++) {
+            if (in.get(i) != '\n') {
+                continue;
+            }
+            String line = new String(in.array(), lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+            lineStart = i + 1;
+            if (!line.isEmpty() && !stageReply(connection, execute(connection, line))) {
+                socketFull = true;
+                break;
+            }
+        }
+        if (connection.endOfInput && !socketFull && lineStart < in.limit()) {
+            // The client hung up mid-line; reject the fragment rather than dropping it silently
+            String line = new String(in.array(), lineStart, in.limit() - lineStart, StandardCharsets.UTF_8).trim();
+            lineStart = in.limit();
+            if (!line.isEmpty()) {
+                stageReply(connection, "ERR unterminated line: " + line);
+            }
+        }
+        in.position(lineStart);
+        in.compact();
+        if (connection.pending == null) {
+            writeStaged(connection);
+        }
+        if (!in.hasRemaining() && connection.pending == null) {
+            // A full buffer with no newline: the line is longer than we accept
+            stageReply(connection, "ERR line longer than " + maxLineBytes + " bytes");
+            in.clear();
+            if (connection.pending == null) {
+                writeStaged(connection);
+            }
+            connection.closeAfterFlush = true;
+        }
+        updateInterest(key, connection);
+    }
+
+    // Returns false once the socket is full; the reply is then queued behind the pending bytes
+    private boolean stageReply(HubConnection connection, String reply) throws IOException {
+        byte[] bytes = reply.replace('\n', ' ').getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + 1 > out.capacity()) {
+            bytes = "ERR reply too large".getBytes(StandardCharsets.UTF_8);
+        }
+        if (bytes.length + 1 > out.remaining() && !writeStaged(connection)) {
+            ByteBuffer queued = ByteBuffer.allocate(connection.pending.remaining() + bytes.length + 1);
+            queued.put(connection.pending).put(bytes).put((byte) '\n').flip();
+            keepPending(connection, queued);
+            return false;
+        }
+        out.put(bytes).put((byte) '\n');
+        return true;
+    }
+
+    // Returns false when the socket could not take everything; the rest is kept as pending
+    private boolean writeStaged(HubConnection connection) throws IOException {
+        out.flip();
+        if (out.hasRemaining()) {
+            connection.channel.write(out);
+        }
+        if (out.hasRemaining()) {
+            ByteBuffer rest = ByteBuffer.allocate(out.remaining());
+            rest.put(out).flip();
+            out.clear();
+            keepPending(connection, rest);
+            return false;
+        }
+        out.clear();
+        return true;
+    }
+
+    private void flushPending(SelectionKey key) throws IOException {
+        HubConnection connection = (HubConnection) key.attachment();
+        if (connection.pending != null) {
+            connection.channel.write(connection.pending);
+            if (connection.pending.hasRemaining()) {
+                return;
+            }
+            releasePending(connection);
+        }
+        // Lines that arrived while the socket was full are still in the input buffer
+        processLines(key, connection);
+    }
+
+    // Throwing makes the selector loop drop the connection, which releases what it held
+    private void keepPending(HubConnection connection, ByteBuffer buffer) throws IOException {
+        long held = connection.pending == null ? 0 : connection.pending.capacity();
+        if (pendingBytes - held + buffer.capacity() > maxPendingBytes) {
+            throw new IOException("Pending replies over " + maxPendingBytes + " bytes; dropping a client that is not reading");
+        }
+        pendingBytes += buffer.capacity() - held;
+        connection.pending = buffer;
+    }
+
+    private void releasePending(HubConnection connection) {
+        if (connection.pending != null) {
+            pendingBytes -= connection.pending.capacity();
+            connection.pending = null;
+        }
+    }
+
+    // Backpressure: a connection with unsent replies is not read until they drain
+    private void updateInterest(SelectionKey key, HubConnection connection) {
+        if (connection.pending != null) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (connection.closeAfterFlush) {
+            closeConnection(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private String execute(HubConnection connection, String line) {
+        if (line.startsWith("auth ")) {
+            String principal = principalsByToken.get(line.substring(5).trim());
+            if (principal == null) {
+                return "ERR unknown token";
+            }
+            connection.principal = principal;
+            return "OK authenticated as " + principal;
+        }
+        if (policy == null) {
+            return execute(line);
+        }
+        return policy.callAs(connection.principal, () -> execute(line));
+    }
+
+    String execute(String line) {
+        try {
+            switch (line) {
+                case "status":
+                    return "OK " + hub.statusReport();
+                case "schedules":
+                    return "OK " + hub.scheduledTasksReport();
+                case "triggers":
+                    return "OK " + hub.triggersReport();
+                default:
+                    return Smarthome.executeCommand(hub, line) ? "OK" : "ERR unknown command: " + line;
+            }
+        } catch (RuntimeException e) {
+            // Malformed arguments or a denied device command
+            return "ERR " + e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private void closeConnection(SelectionKey key) {
+        if (key.attachment() instanceof HubConnection) {
+            releasePending((HubConnection) key.attachment());
+            connections--;
+        }
+        closeQuietly(key);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        closeQuietly(key.channel());
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        selector.close();
+    }
+
+    // HubCommandServer [port [bind address]]: serves the demo hub until the process is stopped.
+    // Listens on loopback only unless an address is given, since commands are not authenticated.
+    public static void main(String[] args) throws IOException {
+        SmartHomeHub hub = new SmartHomeHub();
+        hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("light", 1)));
+        hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("thermostat", 2)));
+        hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("door lock", 3)));
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        InetAddress host = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        HubCommandServer server = new HubCommandServer(hub, new InetSocketAddress(host, port));
+        server.start();
+        System.out.println("Hub command server listening on " + host.getHostAddress() + ":" + server.getPort());
+    }
+}
+
+// Simulation settings; every field can be overridden on the command line as key=value
+class FleetConfig {
+    int lights = 10_000;
+    int thermostats = 1_000;
+    int doorLocks = 0;
+    int triggers = 10;
+    // Share of devices that get a turn on/off task at the top of some hour
+    double scheduledShare = 0.1;
+    // Target operations per second, issued on a fixed timetable regardless of how the hub keeps up
+    double rate = 10_000;
+    Duration duration = Duration.ofSeconds(30);
+    // Simulated seconds per real second, so hourly schedule bursts come round quickly
+    double timeScale = 600;
+    LocalTime startTime = LocalTime.of(7, 58);
+    // Relative weights of the command mix
+    int turnOnWeight = 45;
+    int turnOffWeight = 45;
+    int temperatureWeight = 10;
+    long seed = 42;
+    String metricsFile;
+
+    static FleetConfig fromArgs(String[] args) {
+        FleetConfig config = new FleetConfig();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String value = keyValue[1];
+            switch (keyValue[0]) {
+                case "lights":
+                    config.lights = Integer.parseInt(value);
+                    break;
+                case "thermostats":
+                    config.thermostats = Integer.parseInt(value);
+                    break;
+                case "doorLocks":
+                    config.doorLocks = Integer.parseInt(value);
+                    break;
+                case "triggers":
+                    config.triggers = Integer.parseInt(value);
+                    break;
+                case "scheduledShare":
+                    config.scheduledShare = Double.parseDouble(value);
+                    break;
+                case "rate":
+                    config.rate = Double.parseDouble(value);
+                    break;
+                case "seconds":
+                    config.duration = Duration.ofMillis((long) (Double.parseDouble(value) * 1000));
+                    break;
+                case "timeScale":
+                    config.timeScale = Double.parseDouble(value);
+                    break;
+                case "startTime":
+                    config.startTime = LocalTime.parse(value);
+                    break;
+                case "turnOnWeight":
+                    config.turnOnWeight = Integer.parseInt(value);
+                    break;
+                case "turnOffWeight":
+                    config.turnOffWeight = Integer.parseInt(value);
+                    break;
+                case "temperatureWeight":
+                    config.temperatureWeight = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                case "metricsFile":
+                    config.metricsFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting " + keyValue[0]);
+            }
+        }
+        return config;
+    }
+
+    // Rejects settings the simulator would otherwise trip over mid-run
+    void validate() {
+        if (!(rate > 0 && rate <= 1e9)) {
+            throw new IllegalArgumentException("rate must be above 0 and at most 1e9 ops/s, got " + rate);
+        }
+        // A negative scale runs the simulated clock backwards, and each step would then sweep most of a day
+        if (!(timeScale > 0 && Double.isFinite(timeScale))) {
+            throw new IllegalArgumentException("timeScale must be a finite number above 0, got " + timeScale);
+        }
+        if (!(scheduledShare >= 0 && scheduledShare <= 1)) {
+            throw new IllegalArgumentException("scheduledShare must be between 0 and 1, got " + scheduledShare);
+        }
+        if (lights < 0 || thermostats < 0 || doorLocks < 0 || lights + thermostats + doorLocks == 0) {
+            throw new IllegalArgumentException("Device counts must not be negative and the fleet must not be empty");
+        }
+        if (turnOnWeight < 0 || turnOffWeight < 0 || temperatureWeight < 0
+                || turnOnWeight + turnOffWeight + temperatureWeight == 0) {
+            throw new IllegalArgumentException("Command weights must not be negative and must not all be 0");
+        }
+    }
+}
+
+// Operations the simulator issues against the hub
+enum FleetOperation {
+    TURN_ON, TURN_OFF, TEMPERATURE, SCHEDULE_BURST, ALL
+}
+
+// Drives a generated fleet at a fixed open-loop rate from one thread (the hub is not thread-safe).
+// Latency is measured both from the actual send time and from the time the operation was due;
+// the second is corrected for coordinated omission, so a stalled hub cannot hide its queueing delay.
+class FleetSimulator {
+    private static final int MIN_TEMPERATURE = 60;
+    private static final int MAX_TEMPERATURE = 85;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final FleetConfig config;
+    private final SmartHomeHub hub;
+    private final SplittableRandom random;
+    // System.nanoTime() when run() started; simulated time counts from here
+    private long startNanos;
+    private final int deviceCount;
+    private Thermostat[] thermostats;
+
+    private final LatencyHistogram[] corrected = new LatencyHistogram[FleetOperation.values().length];
+    private final LatencyHistogram[] uncorrected = new LatencyHistogram[FleetOperation.values().length];
+
+    FleetSimulator(FleetConfig config) {
+        config.validate();
+        this.config = config;
+        this.hub = new SmartHomeHub(new SimulatedClock());
+        this.random = new SplittableRandom(config.seed);
+        this.deviceCount = config.lights + config.thermostats + config.doorLocks;
+        for (int i = 0; i < corrected.length; i++) {
+            corrected[i] = new LatencyHistogram();
+            uncorrected[i] = new LatencyHistogram();
+        }
+    }
+
+    SmartHomeHub getHub() {
+        return hub;
+    }
+
+    // Ids run lights, then thermostats, then door locks; the triggers act on light 1
+    void buildFleet() {
+        thermostats = new Thermostat[config.thermostats];
+        int id = 1;
+        for (int i = 0; i < config.lights; i++) {
+            hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("light", id++)));
+        }
+        for (int i = 0; i < config.thermostats; i++) {
+            SmartDevice device = SmartDeviceFactory.createDevice("thermostat", id++);
+            thermostats[i] = (Thermostat) device;
+            hub.addDevice(new SmartDeviceProxy(device));
+        }
+        for (int i = 0; i < config.doorLocks; i++) {
+            hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("door lock", id++)));
+        }
+        for (int i = 0; i < config.triggers; i++) {
+            hub.addTrigger("temperature", ">", 75 + i % 5, "turnOff(1)");
+        }
+        for (int device = 1; device <= deviceCount; device++) {
+            if (random.nextDouble() < config.scheduledShare) {
+                LocalTime topOfHour = LocalTime.of(random.nextInt(24), 0);
+                hub.setSchedule(device, topOfHour, random.nextBoolean() ? "Turn On" : "Turn Off");
+            }
+        }
+    }
+
+    void run() {
+        long intervalNanos = (long) (1_000_000_000L / config.rate);
+        long totalWeight = config.turnOnWeight + config.turnOffWeight + config.temperatureWeight;
+        long start = System.nanoTime();
+        startNanos = start;
+        long end = start + config.duration.toNanos();
+        long lastMinute = simulatedTime(start, start).toSecondOfDay() / 60;
+        long completed = 0;
+
+        long intended = start;
+        for (; intended < end; intended += intervalNanos) {
+            waitUntil(intended);
+            if (System.nanoTime() >= end) {
+                break;
+            }
+
+            // Every simulated minute entered since the last step gets its sweep, wrapping past midnight
+            LocalTime simulated = simulatedTime(start, intended);
+            long minute = simulated.toSecondOfDay() / 60;
+            if (minute != lastMinute) {
+                long sent = System.nanoTime();
+                while (lastMinute != minute) {
+                    lastMinute = (lastMinute + 1) % MINUTES_PER_DAY;
+                    hub.executeScheduledTasks(LocalTime.ofSecondOfDay(lastMinute * 60));
+                }
+                record(FleetOperation.SCHEDULE_BURST, intended, sent);
+            }
+
+            long sent = System.nanoTime();
+            long pick = random.nextLong(totalWeight);
+            FleetOperation operation;
+            if (pick < config.turnOnWeight) {
+                operation = FleetOperation.TURN_ON;
+                hub.turnOn(1 + random.nextInt(deviceCount));
+            } else if (pick < config.turnOnWeight + config.turnOffWeight) {
+                operation = FleetOperation.TURN_OFF;
+                hub.turnOff(1 + random.nextInt(deviceCount));
+            } else {
+                operation = FleetOperation.TEMPERATURE;
+                stepTemperature();
+                hub.evaluateTriggers();
+            }
+            record(operation, intended, sent);
+            completed++;
+        }
+        long elapsed = System.nanoTime() - start;
+        // Operations that fell due while the hub was busy but never got sent before the end
+        long missed = Math.max(0, (end - intended + intervalNanos - 1) / intervalNanos);
+        System.out.println(report(completed, missed, elapsed));
+    }
+
+    // One random-walk step for a random thermostat
+    private void stepTemperature() {
+        if (thermostats.length == 0) {
+            return;
+        }
+        Thermostat thermostat = thermostats[random.nextInt(thermostats.length)];
+        int next = thermostat.getTemperature() + (random.nextBoolean() ? 1 : -1);
+        thermostat.setTemperature(Math.max(MIN_TEMPERATURE, Math.min(MAX_TEMPERATURE, next)));
+    }
+
+    private LocalTime simulatedTime(long start, long now) {
+        long simulatedNanos = (long) ((now - start) * config.timeScale);
+        return config.startTime.plusNanos(simulatedNanos);
+    }
+
+    // The hub's clock: simulated time of day on a fixed date, so schedule lag is in simulated time
+    private class SimulatedClock extends Clock {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            if (!ZoneOffset.UTC.equals(zone)) {
+                throw new UnsupportedOperationException("The simulated clock only runs in UTC");
+            }
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return simulatedTime(startNanos, System.nanoTime()).atDate(LocalDate.of(1970, 1, 1)).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    private void record(FleetOperation operation, long intended, long sent) {
+        long done = System.nanoTime();
+        corrected[operation.ordinal()].record(done - intended);
+        uncorrected[operation.ordinal()].record(done - sent);
+        corrected[FleetOperation.ALL.ordinal()].record(done - intended);
+        uncorrected[FleetOperation.ALL.ordinal()].record(done - sent);
+    }
+
+    // Park for the long part of the wait and spin for the last stretch
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100_000) {
+                LockSupport.parkNanos(remaining - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    String report(long completed, long missed, long elapsedNanos) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Fleet: %d devices (%d lights, %d thermostats, %d door locks), %d triggers%n",
+                deviceCount, config.lights, config.thermostats, config.doorLocks, config.triggers));
+        out.append(String.format(Locale.ROOT, "Target %.0f ops/s, achieved %.1f ops/s over %.1f s%n",
+                config.rate, completed * 1e9 / elapsedNanos, elapsedNanos / 1e9));
+        if (missed > 0) {
+            out.append(String.format(Locale.ROOT, "%d operations were due but never sent; the hub cannot sustain this rate%n",
+                    missed));
+        }
+        out.append(String.format(Locale.ROOT, "%-15s %10s %12s %12s %12s %12s %12s%n",
+                "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us"));
+        for (FleetOperation operation : FleetOperation.values()) {
+            appendRow(out, operation.name().toLowerCase(Locale.ROOT), corrected[operation.ordinal()].snapshot());
+            appendRow(out, "  uncorrected", uncorrected[operation.ordinal()].snapshot());
+        }
+        return out.toString();
+    }
+
+    private static void appendRow(StringBuilder out, String label, LatencyHistogram.Snapshot snapshot) {
+        out.append(String.format(Locale.ROOT, "%-15s %10d %12.1f %12.1f %12.1f %12.1f %12.1f%n", label, snapshot.count,
+                snapshot.percentile(0.5) / 1e3, snapshot.percentile(0.9) / 1e3, snapshot.percentile(0.99) / 1e3,
+                snapshot.percentile(0.999) / 1e3, snapshot.max / 1e3));
+    }
+
+    // FleetSimulator [key=value ...], e.g. lights=1000000 thermostats=10000 rate=5000 seconds=60
+    public static void main(String[] args) throws IOException {
+        FleetConfig config = FleetConfig.fromArgs(args);
+        FleetSimulator simulator = new FleetSimulator(config);
+        long buildStart = System.nanoTime();
+        simulator.buildFleet();
+        System.out.printf(Locale.ROOT, "Built fleet in %.1f s%n", (System.nanoTime() - buildStart) / 1e9);
+        simulator.run();
+        if (config.metricsFile != null) {
+            simulator.getHub().getMetrics().writePrometheus(Paths.get(config.metricsFile));
+        }
+    }
+}
+
 // Main class to demonstrate the Smart Home System
 public class Smarthome{
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         SmartHomeHub hub = new SmartHomeHub();
 
         // Sample Inputs
@@ -384,9 +1731,14 @@ public class Smarthome{
         System.out.println("Status Report: \"" + hub.statusReport() + "\"");
         System.out.println("Scheduled Tasks: \"" + hub.scheduledTasksReport() + "\"");
         System.out.println("Automated Triggers: \"" + hub.triggersReport() + "\"");
+
+        // Optional metrics dump: Smarthome <metrics file>
+        if (args.length > 0) {
+            hub.getMetrics().writePrometheus(Paths.get(args[0]));
+        }
     }
 
-    private static List<Map<String, String>> parseDevices(String input) {
+    static List<Map<String, String>> parseDevices(String input) {
         List<Map<String, String>> devicesList = new ArrayList<>();
         input = input.substring(1, input.length() - 1); // Remove brackets
         String[] devicesArray = input.split("}, ");
@@ -403,13 +1755,14 @@ public class Smarthome{
         return devicesList;
     }
 
-    private static List<String> parseCommands(String input) {
+    static List<String> parseCommands(String input) {
         input = input.substring(1, input.length() - 1); // Remove brackets
         String[] commandsArray = input.split(", ");
         return Arrays.asList(commandsArray);
     }
 
-    private static void executeCommand(SmartHomeHub hub, String command) {
+    // Returns false when the command is not part of the grammar
+    static boolean executeCommand(SmartHomeHub hub, String command) {
         if (command.startsWith("turnOn(")) {
             int id = Integer.parseInt(command.substring(7, command.length() - 1));
             hub.turnOn(id);
@@ -429,6 +1782,9 @@ public class Smarthome{
             int value = Integer.parseInt(parts[2]);
             String action = parts[3].replace("\"", "");
             hub.addTrigger(condition, operator, value, action);
+        } else {
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+package Pattern;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Caller-side cost of the singleton Logger in async mode
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggerBenchmark {
+    private SingletonPattern.Logger logger;
+    private LogSampler sampler;
+    private Path dir;
+    private long counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("logger-bench");
+        SingletonPattern.Logger.enableAsync(dir.resolve("bench.log"), 64 * 1024, 64L * 1024 * 1024, Duration.ofHours(1));
+        logger = SingletonPattern.Logger.getLogger("bench");
+        sampler = LogSampler.perSecond(1000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SingletonPattern.Logger.disableAsync();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void plainMessage() {
+        logger.log("Device state changed");
+    }
+
+    @Benchmark
+    public void parameterizedMessage() {
+        logger.log("Device {} changed state {} times", 42, counter++);
+    }
+
+    @Benchmark
+    public void structuredEvent() {
+        logger.at(LogLevel.INFO).field("device", 42).field("state", "on").log("Device state changed");
+    }
+
+    @Benchmark
+    public void sampledEvent() {
+        logger.at(LogLevel.INFO, sampler).field("device", 42).log("High-frequency event");
+    }
+
+    @Benchmark
+    public void disabledLevel() {
+        logger.debug(() -> "Never built " + counter);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void plainMessageContended() {
+        logger.log("Device state changed");
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+package Pattern;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Cart totals, decorator pricing and weather observer fan-out
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatternBenchmark {
+    @Param({"10", "1000"})
+    int size;
+
+    private ShoppingCart cart;
+    private Coffee coffee;
+    private WeatherData weatherData;
+    private float temperature;
+    private float sink;
+
+    @Setup
+    public void setUp() {
+        cart = new ShoppingCart();
+        for (int i = 0; i < size; i++) {
+            cart.addItem(new Item(Integer.toString(i), i % 100));
+        }
+
+        coffee = new SimpleCoffee();
+        for (int i = 0; i < Math.min(size, 100); i++) {
+            coffee = i % 2 == 0 ? new MilkDecorator(coffee) : new SugarDecorator(coffee);
+        }
+
+        weatherData = new WeatherData();
+        for (int i = 0; i < size; i++) {
+            // A cheap observer instead of CurrentConditionsDisplay, which prints
+            weatherData.registerObserver((t, h, p) -> sink += t);
+        }
+    }
+
+    @Benchmark
+    public int cartTotal() {
+        return cart.calculateTotal();
+    }
+
+    @Benchmark
+    public double decoratorCost() {
+        return coffee.getCost();
+    }
+
+    @Benchmark
+    public String decoratorDescription() {
+        return coffee.getDescription();
+    }
+
+    @Benchmark
+    public float notifyObservers() {
+        weatherData.setMeasurements(temperature++, 65, 30.4f);
+        return sink;
+    }
+}
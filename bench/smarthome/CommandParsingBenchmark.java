@@ -0,0 +1,79 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+package smarthome;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Throughput of the Smarthome input parsers and command dispatch
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandParsingBenchmark {
+    private static final String COMMANDS =
+            "['turnOn(1)', 'setSchedule(2, \"06:00\", \"Turn On\")', 'addTrigger(\"temperature\", \">\", 75, \"turnOff(1)\")']";
+
+    @Param({"3", "100"})
+    int devices;
+
+    private String devicesInput;
+    private SmartHomeHub hub;
+
+    @Setup
+    public void setUp() {
+        StringBuilder input = new StringBuilder("[");
+        for (int id = 1; id <= devices; id++) {
+            if (id > 1) {
+                input.append(", ");
+            }
+            switch (id % 3) {
+                case 0:
+                    input.append("{id: ").append(id).append(", type: 'door lock', status: 'locked'}");
+                    break;
+                case 1:
+                    input.append("{id: ").append(id).append(", type: 'light', status: 'off'}");
+                    break;
+                default:
+                    input.append("{id: ").append(id).append(", type: 'thermostat', temperature: 70}");
+            }
+        }
+        devicesInput = input.append("]").toString();
+
+        hub = new SmartHomeHub();
+        for (int id = 1; id <= devices; id++) {
+            hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("light", id)));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, String>> parseDevices() {
+        return Smarthome.parseDevices(devicesInput);
+    }
+
+    @Benchmark
+    public List<String> parseCommands() {
+        return Smarthome.parseCommands(COMMANDS);
+    }
+
+    // setSchedule/addTrigger are left out: they append to the hub on every call and would grow without bound
+    @Benchmark
+    public boolean executeTurnOn() {
+        return Smarthome.executeCommand(hub, "turnOn(1)");
+    }
+
+    @Benchmark
+    public boolean executeTurnOff() {
+        return Smarthome.executeCommand(hub, "turnOff(1)");
+    }
+}
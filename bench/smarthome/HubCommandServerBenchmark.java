@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+package smarthome;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Pipelined round trips to HubCommandServer over loopback. Every request is written before any
+// reply is read, and each status reply lists the whole fleet (about 18 KB), so a 1000-deep pipeline
+// (about 9 MB of replies) overflows even autotuned socket buffers and goes through the server's
+// pending-reply and backpressure path.
+// Every reply is checked, so a broken server fails the run instead of just scoring differently.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HubCommandServerBenchmark {
+    private static final int DEVICES = 1000;
+
+    @Param({"1", "1000"})
+    int pipelineDepth;
+
+    private HubCommandServer server;
+    private Socket socket;
+    private OutputStream out;
+    private BufferedReader in;
+    private byte[] requests;
+
+    @Setup
+    public void setUp() throws IOException {
+        SmartHomeHub hub = new SmartHomeHub();
+        for (int id = 1; id <= DEVICES; id++) {
+            hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice("light", id)));
+        }
+        server = new HubCommandServer(hub, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        socket.setSoTimeout(10_000);
+        out = socket.getOutputStream();
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        StringBuilder batch = new StringBuilder();
+        for (int i = 0; i < pipelineDepth; i++) {
+            batch.append(i % 2 == 0 ? "turnOn(1)\n" : "status\n");
+        }
+        requests = batch.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        server.close();
+    }
+
+    @Benchmark
+    public int pipelinedRoundTrip() throws IOException {
+        out.write(requests);
+        out.flush();
+        for (int i = 0; i < pipelineDepth; i++) {
+            String reply = in.readLine();
+            if (reply == null || !reply.startsWith("OK")) {
+                throw new IllegalStateException("Reply " + i + " of " + pipelineDepth + ": " + reply);
+            }
+        }
+        return pipelineDepth;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+package smarthome;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Hub hot paths: every command fans out to all registered devices
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmartHomeHubBenchmark {
+    private static final String[] TYPES = {"light", "thermostat", "door lock"};
+
+    @Param({"10", "1000", "10000"})
+    int devices;
+
+    @Param({"10"})
+    int triggers;
+
+    private SmartHomeHub hub;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        hub = new SmartHomeHub();
+        for (int id = 1; id <= devices; id++) {
+            hub.addDevice(new SmartDeviceProxy(SmartDeviceFactory.createDevice(TYPES[id % TYPES.length], id)));
+            // Schedules that never match now, so the benchmark measures the scan
+            hub.setSchedule(id, LocalTime.MIDNIGHT.plusMinutes(id % 1440), id % 2 == 0 ? "Turn On" : "Turn Off");
+        }
+        for (int i = 0; i < triggers; i++) {
+            // Thermostats default to 70, so the triggers are evaluated but never fire
+            hub.addTrigger("temperature", ">", 75 + i, "turnOff(1)");
+        }
+    }
+
+    private int nextId() {
+        next = next == devices ? 1 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public void turnOn() {
+        hub.turnOn(nextId());
+    }
+
+    @Benchmark
+    public void turnOff() {
+        hub.turnOff(nextId());
+    }
+
+    @Benchmark
+    public void notifyObservers() {
+        hub.notifyObservers();
+    }
+
+    @Benchmark
+    public void evaluateTriggers() {
+        hub.evaluateTriggers();
+    }
+
+    @Benchmark
+    public void executeScheduledTasks() {
+        hub.executeScheduledTasks();
+    }
+}
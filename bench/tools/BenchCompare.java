@@ -0,0 +1,239 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Main.java to edit this template
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *
+ * @author poornimaepy
+ */
+// Compares two JMH JSON result files and fails when a benchmark regressed past the threshold.
+// Both files must come from the same host and JVM; scores from different machines do not compare.
+public class BenchCompare {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchCompare <baseline.json> <results.json> [threshold, default 0.10]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        Map<String, Result> baseline = load(args[0]);
+        Map<String, Result> current = load(args[1]);
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("NEW        %-70s %14.3f %s%n", entry.getKey(), now.score, now.unit);
+                continue;
+            }
+            // Throughput should not drop; time-per-op modes should not rise. A move only counts when it
+            // is past the threshold and also larger than both runs' error margins combined, so noise
+            // alone never fails the build
+            double delta = now.higherIsBetter() ? before.score - now.score : now.score - before.score;
+            double change = (now.score - before.score) / before.score;
+            boolean regressed = delta > threshold * before.score && delta > before.error + now.error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %-70s %14.3f -> %14.3f %s (%+.1f%%, error +/-%.1f%%)%n",
+                    regressed ? "REGRESSED" : "ok", entry.getKey(), before.score, now.score, now.unit, change * 100,
+                    (before.error + now.error) / before.score * 100);
+        }
+        for (String missing : baseline.keySet()) {
+            if (!current.containsKey(missing)) {
+                System.out.printf("MISSING    %s%n", missing);
+            }
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) regressed by more than " + (threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    static final class Result {
+        final String mode;
+        final double score;
+        // Half-width of JMH's 99.9% confidence interval
+        final double error;
+        final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    // Keyed by benchmark name plus its sorted @Param values
+    @SuppressWarnings("unchecked")
+    static Map<String, Result> load(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, Result> results = new TreeMap<>();
+        for (Object element : (List<Object>) new JsonParser(json).parse()) {
+            Map<String, Object> run = (Map<String, Object>) element;
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+            Object params = run.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> param : new TreeMap<>((Map<String, Object>) params).entrySet()) {
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+                }
+            }
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+            // A single-iteration run has no interval; JMH then writes the string "NaN"
+            Object error = metric.get("scoreError");
+            results.put(key.toString(), new Result((String) run.get("mode"),
+                    ((Number) metric.get("score")).doubleValue(),
+                    error instanceof Number ? ((Number) error).doubleValue() : 0, (String) metric.get("scoreUnit")));
+        }
+        return results;
+    }
+
+    // Just enough JSON for JMH output: objects, arrays, strings, numbers, booleans and null
+    static final class JsonParser {
+        private final String text;
+        private int pos;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            skipWhitespace();
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    pos += 4;
+                    return Boolean.TRUE;
+                case 'f':
+                    pos += 5;
+                    return Boolean.FALSE;
+                case 'n':
+                    pos += 4;
+                    return null;
+                default:
+                    return parseNumber();
+            }
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            if (text.charAt(pos) == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parse());
+                skipWhitespace();
+                if (text.charAt(pos++) == '}') {
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            if (text.charAt(pos) == ']') {
+                pos++;
+                return array;
+            }
+            while (true) {
+                array.add(parse());
+                skipWhitespace();
+                if (text.charAt(pos++) == ']') {
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c == '\\') {
+                    char escaped = text.charAt(pos++);
+                    switch (escaped) {
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'u':
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default:
+                            sb.append(escaped);
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+
+        private Object parseNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            // JMH writes "NaN" and "Infinity" as strings, so plain digits are all we see here
+            return Double.parseDouble(number);
+        }
+
+        private void expect(char c) {
+            if (text.charAt(pos++) != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at offset " + (pos - 1));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}